@@ -1,26 +1,46 @@
 package pl.cleankod;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import feign.Feign;
+import feign.Request;
 import feign.httpclient.ApacheHttpClient;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.env.Environment;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import pl.cleankod.exchange.core.gateway.AccountRepository;
 import pl.cleankod.exchange.core.gateway.CurrencyConversionService;
 import pl.cleankod.exchange.core.usecase.FindAccountAndConvertCurrencyUseCase;
 import pl.cleankod.exchange.core.usecase.FindAccountUseCase;
 import pl.cleankod.exchange.entrypoint.AccountController;
 import pl.cleankod.exchange.entrypoint.ExceptionHandlerAdvice;
+import pl.cleankod.exchange.entrypoint.codec.AccountBinaryHttpMessageConverter;
+import pl.cleankod.exchange.entrypoint.codec.AccountJsonModule;
 import pl.cleankod.exchange.provider.AccountInMemoryRepository;
 import pl.cleankod.exchange.provider.CurrencyConversionNbpService;
 import pl.cleankod.exchange.provider.nbp.ExchangeRatesNbpClient;
+import pl.cleankod.exchange.provider.peer.RateSnapshotPeers;
+import pl.cleankod.exchange.provider.peer.RateSnapshotPublisher;
 import pl.cleankod.exchange.service.AccountService;
+import pl.cleankod.util.AdaptiveConcurrencyLimiter;
+import pl.cleankod.util.ExchangeRateCache;
 
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @SpringBootConfiguration
 @EnableAutoConfiguration
@@ -37,20 +57,89 @@ public class ApplicationInitializer {
     @Bean
     ExchangeRatesNbpClient exchangeRatesNbpClient(Environment environment) {
         String nbpApiBaseUrl = environment.getRequiredProperty("provider.nbp-api.base-url");
+        Long connectTimeout = environment.getRequiredProperty("nbp-api.connect-timeout-ms", Long.class);
+        Long readTimeout = environment.getRequiredProperty("nbp-api.read-timeout-ms", Long.class);
         return Feign.builder()
                 .client(new ApacheHttpClient())
+                .options(new Request.Options(connectTimeout, TimeUnit.MILLISECONDS, readTimeout, TimeUnit.MILLISECONDS, true))
                 .encoder(new JacksonEncoder())
                 .decoder(new JacksonDecoder())
                 .target(ExchangeRatesNbpClient.class, nbpApiBaseUrl);
     }
 
     @Bean
-    CurrencyConversionService currencyConversionService(Environment environment, ExchangeRatesNbpClient exchangeRatesNbpClient) {
+    ExchangeRateCache exchangeRateCache(Environment environment) {
         Long cacheRefresh = environment.getRequiredProperty("nbp-api.cache.refresh-ms", Long.class);
+        Long adoptedGrace = environment.getProperty("nbp-api.peers.adopted-grace-ms", Long.class, 0L);
+        return new ExchangeRateCache(cacheRefresh, adoptedGrace);
+    }
+
+    @Bean
+    RateSnapshotPublisher rateSnapshotPublisher(Environment environment, ExchangeRateCache exchangeRateCache) throws SocketException {
+        Integer port = environment.getProperty("nbp-api.peers.port", Integer.class);
+        if (port == null) {
+            return RateSnapshotPublisher.NONE;
+        }
+
+        String bindHost = environment.getProperty("nbp-api.peers.bind-address", "localhost");
+        byte[] secret = environment.getRequiredProperty("nbp-api.peers.secret").getBytes(StandardCharsets.UTF_8);
+        List<InetSocketAddress> peers = Arrays.stream(environment.getProperty("nbp-api.peers.addresses", String[].class, new String[0]))
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .map(ApplicationInitializer::parsePeerAddress)
+                .toList();
+        return new RateSnapshotPeers(new InetSocketAddress(bindHost, port), peers, secret, exchangeRateCache);
+    }
+
+    private static InetSocketAddress parsePeerAddress(String address) {
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0 || separator == address.length() - 1) {
+            throw new IllegalArgumentException("Invalid nbp-api.peers.addresses entry, expected host:port but got: " + address);
+        }
+        try {
+            return new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid nbp-api.peers.addresses entry, expected host:port but got: " + address, ex);
+        }
+    }
+
+    @Bean
+    AdaptiveConcurrencyLimiter nbpConcurrencyLimiter(Environment environment) {
+        Integer initialLimit = environment.getRequiredProperty("nbp-api.concurrency-limit.initial", Integer.class);
+        Integer minLimit = environment.getRequiredProperty("nbp-api.concurrency-limit.min", Integer.class);
+        Integer maxLimit = environment.getRequiredProperty("nbp-api.concurrency-limit.max", Integer.class);
+        return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+    }
+
+    @Bean
+    MeterBinder nbpConcurrencyLimiterMetrics(AdaptiveConcurrencyLimiter nbpConcurrencyLimiter) {
+        return registry -> {
+            Gauge.builder("nbp.concurrency.limit", nbpConcurrencyLimiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .description("Current adaptive limit of concurrent NBP API calls")
+                    .register(registry);
+            Gauge.builder("nbp.concurrency.in-flight", nbpConcurrencyLimiter, AdaptiveConcurrencyLimiter::getInFlight)
+                    .description("NBP API calls currently in progress")
+                    .register(registry);
+            FunctionCounter.builder("nbp.concurrency.rejections", nbpConcurrencyLimiter, AdaptiveConcurrencyLimiter::getRejections)
+                    .description("Requests rejected because the NBP concurrency limit was reached")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    CurrencyConversionService currencyConversionService(Environment environment,
+                                                        ExchangeRatesNbpClient exchangeRatesNbpClient,
+                                                        ExchangeRateCache exchangeRateCache,
+                                                        RateSnapshotPublisher rateSnapshotPublisher,
+                                                        AdaptiveConcurrencyLimiter nbpConcurrencyLimiter) {
+        Long fetchTimeout = environment.getRequiredProperty("nbp-api.connect-timeout-ms", Long.class)
+                + environment.getRequiredProperty("nbp-api.read-timeout-ms", Long.class);
         Long failureTimeout = environment.getRequiredProperty("nbp-api.circuit-breaker.failure-timeout-ms", Long.class);
         Integer failureThreshold = environment.getRequiredProperty("nbp-api.circuit-breaker.failure-threshold", Integer.class);
+        Long errorLogInterval = environment.getRequiredProperty("nbp-api.error-log.interval-ms", Long.class);
 
-        return new CurrencyConversionNbpService(exchangeRatesNbpClient, cacheRefresh, failureTimeout, failureThreshold);
+        return new CurrencyConversionNbpService(exchangeRatesNbpClient, exchangeRateCache, rateSnapshotPublisher,
+                nbpConcurrencyLimiter, fetchTimeout, failureTimeout, failureThreshold, errorLogInterval);
     }
 
     @Bean
@@ -80,7 +169,26 @@ public class ApplicationInitializer {
     }
 
     @Bean
-    ExceptionHandlerAdvice exceptionHandlerAdvice() {
-        return new ExceptionHandlerAdvice();
+    AccountJsonModule accountJsonModule() {
+        return new AccountJsonModule();
+    }
+
+    @Bean
+    WebMvcConfigurer accountBinaryEncodingConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                // appended last so JSON stays the default when the client does not ask for the binary encoding
+                converters.add(new AccountBinaryHttpMessageConverter());
+            }
+        };
+    }
+
+    @Bean
+    ExceptionHandlerAdvice exceptionHandlerAdvice(Environment environment, ObjectMapper objectMapper) throws JsonProcessingException {
+        Long failureTimeout = environment.getRequiredProperty("nbp-api.circuit-breaker.failure-timeout-ms", Long.class);
+        long circuitOpenRetryAfter = Math.max(1, (failureTimeout + 999) / 1000);
+        Long concurrencyLimitRetryAfter = environment.getRequiredProperty("nbp-api.concurrency-limit.retry-after-s", Long.class);
+        return new ExceptionHandlerAdvice(objectMapper, circuitOpenRetryAfter, concurrencyLimitRetryAfter);
     }
 }
@@ -1,17 +1,33 @@
 package pl.cleankod.exchange.entrypoint;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import pl.cleankod.exchange.core.usecase.CurrencyConversionException;
 import pl.cleankod.exchange.entrypoint.model.ApiError;
+import pl.cleankod.exchange.provider.nbp.CircuitOpenException;
+import pl.cleankod.exchange.provider.nbp.ConcurrencyLimitExceededException;
 import pl.cleankod.exchange.provider.nbp.CurrencyConversionServiceException;
 
 @ControllerAdvice
 public class ExceptionHandlerAdvice {
 
+    private final ResponseEntity<byte[]> circuitOpenResponse;
+    private final ResponseEntity<byte[]> concurrencyLimitExceededResponse;
+
+    public ExceptionHandlerAdvice(ObjectMapper objectMapper,
+                                  long circuitOpenRetryAfter,
+                                  long concurrencyLimitRetryAfter) throws JsonProcessingException {
+        // fail-fast responses are the same for every request, so they are serialized only once
+        this.circuitOpenResponse = serviceUnavailable(objectMapper, CircuitOpenException.INSTANCE, circuitOpenRetryAfter);
+        this.concurrencyLimitExceededResponse = serviceUnavailable(objectMapper, ConcurrencyLimitExceededException.INSTANCE, concurrencyLimitRetryAfter);
+    }
 
     @ExceptionHandler(CurrencyConversionException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
@@ -41,10 +57,32 @@ public class ExceptionHandlerAdvice {
         return new ResponseEntity<>(apiError, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(CircuitOpenException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<byte[]> handleCircuitOpenException(CircuitOpenException ex) {
+        return circuitOpenResponse;
+    }
+
+    @ExceptionHandler(ConcurrencyLimitExceededException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<byte[]> handleConcurrencyLimitExceededException(ConcurrencyLimitExceededException ex) {
+        return concurrencyLimitExceededResponse;
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ResponseEntity<ApiError> handleGenericException(Exception ex) {
         ApiError apiError = new ApiError(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR.value(), "Internal Server Error");
         return new ResponseEntity<>(apiError, HttpStatus.INTERNAL_SERVER_ERROR);
     }
+
+    private static ResponseEntity<byte[]> serviceUnavailable(ObjectMapper objectMapper,
+                                                             Exception ex,
+                                                             long retryAfter) throws JsonProcessingException {
+        ApiError apiError = new ApiError(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE.value(), "Service Unavailable");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .body(objectMapper.writeValueAsBytes(apiError));
+    }
 }
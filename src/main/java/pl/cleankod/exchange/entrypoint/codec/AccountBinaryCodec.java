@@ -0,0 +1,113 @@
+package pl.cleankod.exchange.entrypoint.codec;
+
+import pl.cleankod.exchange.core.domain.Account;
+import pl.cleankod.exchange.core.domain.Money;
+
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Fixed-layout binary encoding of {@link Account}, written field by field from the typed domain values without
+ * reflection or string parsing.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ * version:1 | id.msb:8 | id.lsb:8 | number.length:1 | number:n (ASCII) | amount.unscaled:8 | amount.scale:1 | currency:2 (ISO 4217 numeric)
+ * </pre>
+ */
+public final class AccountBinaryCodec {
+    public static final byte VERSION = 1;
+
+    private static final int FIXED_LENGTH = 1 + 8 + 8 + 1 + 8 + 1 + 2;
+    private static final int MAX_NUMBER_LENGTH = 0xFF;
+
+    /**
+     * Only numeric codes that identify exactly one currency. A shared code (e.g. 891 for both CSD and YUM on JDK 17)
+     * cannot be decoded back unambiguously, so such currencies are rejected by {@link #encode(Account)} instead of
+     * being silently swapped for one another.
+     */
+    private static final Map<Integer, Currency> CURRENCIES_BY_NUMERIC_CODE = Currency.getAvailableCurrencies().stream()
+            .filter(currency -> currency.getNumericCode() > 0)
+            .collect(Collectors.groupingBy(Currency::getNumericCode))
+            .entrySet().stream()
+            .filter(entry -> entry.getValue().size() == 1)
+            .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> entry.getValue().get(0)));
+
+    private AccountBinaryCodec() {
+    }
+
+    public static byte[] encode(Account account) {
+        UUID id = account.id().value();
+
+        String number = account.number().value();
+        int numberLength = number.length();
+        if (numberLength > MAX_NUMBER_LENGTH) {
+            throw new IllegalArgumentException("The account number is too long to be encoded: " + numberLength);
+        }
+
+        BigDecimal amount = account.balance().amount();
+        if (amount.scale() < Byte.MIN_VALUE || amount.scale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("The amount scale cannot be encoded: " + amount.scale());
+        }
+        long unscaledAmount = amount.unscaledValue().longValueExact();
+
+        Currency currency = account.balance().currency();
+        int currencyCode = currency.getNumericCode();
+        if (CURRENCIES_BY_NUMERIC_CODE.get(currencyCode) != currency) {
+            throw new IllegalArgumentException("The currency has no unambiguous numeric code: " + currency);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_LENGTH + numberLength)
+                .put(VERSION)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .put((byte) numberLength);
+        for (int i = 0; i < numberLength; i++) {
+            char c = number.charAt(i);
+            if (c > 0x7F) {
+                throw new IllegalArgumentException("The account number contains a non-ASCII character");
+            }
+            buffer.put((byte) c);
+        }
+        return buffer.putLong(unscaledAmount)
+                .put((byte) amount.scale())
+                .putShort((short) currencyCode)
+                .array();
+    }
+
+    public static Account decode(byte[] payload) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported encoding version: " + version);
+            }
+
+            UUID id = new UUID(buffer.getLong(), buffer.getLong());
+            byte[] number = new byte[Byte.toUnsignedInt(buffer.get())];
+            buffer.get(number);
+            BigDecimal amount = BigDecimal.valueOf(buffer.getLong(), buffer.get());
+            Currency currency = CURRENCIES_BY_NUMERIC_CODE.get(Short.toUnsignedInt(buffer.getShort()));
+            if (currency == null) {
+                throw new IllegalArgumentException("Unknown currency numeric code");
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Unexpected trailing bytes in the payload");
+            }
+
+            return new Account(
+                    Account.Id.of(id),
+                    Account.Number.of(new String(number, StandardCharsets.US_ASCII)),
+                    Money.of(amount, currency)
+            );
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("The payload is truncated", ex);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package pl.cleankod.exchange.entrypoint.codec;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import pl.cleankod.exchange.core.domain.Account;
+
+import java.io.IOException;
+
+/**
+ * Serves {@link Account} as {@link AccountBinaryCodec} payloads when the client explicitly asks for
+ * {@link #MEDIA_TYPE}. It is registered after the default converters so JSON stays the default representation.
+ */
+public class AccountBinaryHttpMessageConverter extends AbstractHttpMessageConverter<Account> {
+    public static final String MEDIA_TYPE_VALUE = "application/vnd.cleankod.account.v1";
+    public static final MediaType MEDIA_TYPE = MediaType.valueOf(MEDIA_TYPE_VALUE);
+
+    public AccountBinaryHttpMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Account.class == clazz;
+    }
+
+    @Override
+    protected Account readInternal(Class<? extends Account> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return AccountBinaryCodec.decode(inputMessage.getBody().readAllBytes());
+        } catch (IllegalArgumentException ex) {
+            throw new HttpMessageNotReadableException("Could not decode account: " + ex.getMessage(), ex, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Account account, HttpOutputMessage outputMessage) throws IOException {
+        byte[] payload;
+        try {
+            payload = AccountBinaryCodec.encode(account);
+        } catch (IllegalArgumentException | ArithmeticException ex) {
+            throw new HttpMessageNotWritableException("Could not encode account: " + ex.getMessage(), ex);
+        }
+        outputMessage.getHeaders().setContentLength(payload.length);
+        outputMessage.getBody().write(payload);
+    }
+}
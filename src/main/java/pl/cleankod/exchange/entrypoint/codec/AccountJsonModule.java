@@ -0,0 +1,24 @@
+package pl.cleankod.exchange.entrypoint.codec;
+
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdDelegatingSerializer;
+import com.fasterxml.jackson.databind.util.StdConverter;
+import pl.cleankod.exchange.core.domain.Account;
+import pl.cleankod.exchange.core.dto.AccountDto;
+
+/**
+ * Writes {@link Account} as its {@link AccountDto}, so the controller can hand the typed domain value to every
+ * converter while the JSON representation stays exactly what it was.
+ */
+public class AccountJsonModule extends SimpleModule {
+
+    public AccountJsonModule() {
+        super(AccountJsonModule.class.getSimpleName());
+        addSerializer(Account.class, new StdDelegatingSerializer(Account.class, new StdConverter<Account, AccountDto>() {
+            @Override
+            public AccountDto convert(Account account) {
+                return account.toDto();
+            }
+        }));
+    }
+}
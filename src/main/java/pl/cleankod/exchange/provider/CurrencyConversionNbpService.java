@@ -1,34 +1,71 @@
 package pl.cleankod.exchange.provider;
 
+import feign.FeignException;
+import feign.RetryableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.cleankod.exchange.core.domain.Money;
 import pl.cleankod.exchange.core.gateway.CurrencyConversionService;
+import pl.cleankod.exchange.provider.nbp.CircuitOpenException;
+import pl.cleankod.exchange.provider.nbp.ConcurrencyLimitExceededException;
 import pl.cleankod.exchange.provider.nbp.CurrencyConversionServiceException;
 import pl.cleankod.exchange.provider.nbp.ExchangeRatesNbpClient;
+import pl.cleankod.exchange.provider.nbp.NoExchangeRateException;
 import pl.cleankod.exchange.provider.nbp.model.RateWrapper;
+import pl.cleankod.exchange.provider.peer.RateSnapshot;
+import pl.cleankod.exchange.provider.peer.RateSnapshotPublisher;
+import pl.cleankod.util.AdaptiveConcurrencyLimiter;
 import pl.cleankod.util.CircuitBreaker;
 import pl.cleankod.util.CurrencyConversions;
 import pl.cleankod.util.ExchangeRateCache;
+import pl.cleankod.util.LogRateLimiter;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
 import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class CurrencyConversionNbpService implements CurrencyConversionService {
     private final ExchangeRatesNbpClient exchangeRatesNbpClient;
     private final ExchangeRateCache exchangeRateCache;
     private final CircuitBreaker circuitBreaker;
+    private final RateSnapshotPublisher rateSnapshotPublisher;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final Long fetchTimeout;
+    private final LogRateLimiter fetchErrorLogLimiter;
+    private final LogRateLimiter circuitOpenLogLimiter;
+    private final LogRateLimiter concurrencyLimitLogLimiter;
+    private final Map<String, CompletableFuture<BigDecimal>> pendingFetches = new ConcurrentHashMap<>();
 
     private static final Logger logger = LoggerFactory.getLogger(CurrencyConversionNbpService.class);
 
-    public CurrencyConversionNbpService(ExchangeRatesNbpClient exchangeRatesNbpClient, Long cacheRefresh, Long failureTimeout, Integer failureThreshold) {
+    public CurrencyConversionNbpService(ExchangeRatesNbpClient exchangeRatesNbpClient,
+                                        ExchangeRateCache exchangeRateCache,
+                                        RateSnapshotPublisher rateSnapshotPublisher,
+                                        AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                        Long fetchTimeout,
+                                        Long failureTimeout,
+                                        Integer failureThreshold,
+                                        Long errorLogInterval) {
         this.exchangeRatesNbpClient = exchangeRatesNbpClient;
-        this.exchangeRateCache = new ExchangeRateCache(cacheRefresh);
+        this.exchangeRateCache = exchangeRateCache;
+        this.rateSnapshotPublisher = rateSnapshotPublisher;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.fetchTimeout = fetchTimeout;
         this.circuitBreaker = new CircuitBreaker(failureTimeout, failureThreshold);
+        // one limiter per reason, so a burst of one kind of error cannot hide the first occurrence of another
+        this.fetchErrorLogLimiter = new LogRateLimiter(errorLogInterval);
+        this.circuitOpenLogLimiter = new LogRateLimiter(errorLogInterval);
+        this.concurrencyLimitLogLimiter = new LogRateLimiter(errorLogInterval);
 
-        logger.info("CurrencyConversionNbpService initialized with cacheRefresh: {}, failureTimeout: {}, failureThreshold: {}",
-                cacheRefresh, failureTimeout, failureThreshold);
+        logger.info("CurrencyConversionNbpService initialized with fetchTimeout: {}, failureTimeout: {}, failureThreshold: {}, errorLogInterval: {}",
+                fetchTimeout, failureTimeout, failureThreshold, errorLogInterval);
     }
 
     @Override
@@ -40,38 +77,164 @@ public class CurrencyConversionNbpService implements CurrencyConversionService {
             throw new CurrencyConversionServiceException("Money and target currency must not be null");
         }
 
-        if (!circuitBreaker.isAvailable()) {
-            logger.error("{} - Service is unavailable", traceId);
-            throw new CurrencyConversionServiceException("Service is unavailable");
+        BigDecimal midRate = exchangeRateCache.getRate(targetCurrency.getCurrencyCode());
+        if (midRate == null) {
+            // consulted on a cache miss only, so cached rates keep being served while the circuit is open
+            if (!circuitBreaker.isAvailable()) {
+                logRejection(circuitOpenLogLimiter, traceId, "circuit breaker is open");
+                throw CircuitOpenException.INSTANCE;
+            }
+            midRate = fetchRateOnce(targetCurrency.getCurrencyCode(), traceId);
+        } else {
+            logger.info("{} - Using cached exchange rate {} for currency {}", traceId, midRate, targetCurrency.getCurrencyCode());
         }
 
-        try {
-            BigDecimal midRate = exchangeRateCache.getRate(targetCurrency.getCurrencyCode());
+        BigDecimal convertedAmount = CurrencyConversions.convert(money.amount(), midRate, RoundingMode.HALF_DOWN);
+        logger.info("{} - Converted amount {}", traceId, convertedAmount);
+
+        return new Money(convertedAmount, targetCurrency);
+    }
+
+    /**
+     * Concurrent cache misses for the same currency share a single NBP call: the first request fetches the rate
+     * and the others wait for its outcome.
+     */
+    private BigDecimal fetchRateOnce(String currencyCode, String traceId) {
+        CompletableFuture<BigDecimal> pending = new CompletableFuture<>();
+        CompletableFuture<BigDecimal> inProgress = pendingFetches.putIfAbsent(currencyCode, pending);
+        if (inProgress != null) {
+            return awaitPendingFetch(inProgress, currencyCode, traceId);
+        }
 
+        try {
+            // the rate may have been fetched or adopted from a peer while this request was on its way here
+            BigDecimal midRate = exchangeRateCache.getRate(currencyCode);
             if (midRate == null) {
-                logger.debug("{} - Retrieving new exchange rate for currency {}", traceId, targetCurrency.getCurrencyCode());
-                RateWrapper rateWrapper = exchangeRatesNbpClient.fetch("A", targetCurrency.getCurrencyCode());
-                if (rateWrapper == null || rateWrapper.rates().isEmpty()) {
-                    logger.error("{} - No exchange rate available for currency {}", traceId, targetCurrency.getCurrencyCode());
-                    throw new CurrencyConversionServiceException("No exchange rate available for currency: " + targetCurrency.getCurrencyCode());
-                }
-                midRate = rateWrapper.rates().get(0).mid();
-                exchangeRateCache.putRate(targetCurrency.getCurrencyCode(), midRate);
-                logger.info("{} - Retrieved new exchange rate {} for currency {}", traceId, midRate, targetCurrency.getCurrencyCode());
-
-                circuitBreaker.reset();
-            } else {
-                logger.info("{} - Using cached exchange rate {} for currency {}", traceId, midRate, targetCurrency.getCurrencyCode());
+                midRate = fetchRate(currencyCode, traceId);
+            }
+            pending.complete(midRate);
+            return midRate;
+        } catch (RuntimeException | Error ex) {
+            pending.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            pendingFetches.remove(currencyCode, pending);
+        }
+    }
+
+    /**
+     * A request waiting for another one's NBP call keeps its worker thread blocked on NBP all the same, so it needs
+     * a permit too: otherwise a single slow currency could still take every worker. The wait is bounded by the NBP
+     * client timeouts.
+     */
+    private BigDecimal awaitPendingFetch(CompletableFuture<BigDecimal> inProgress, String currencyCode, String traceId) {
+        if (!concurrencyLimiter.tryAcquire()) {
+            logRejection(concurrencyLimitLogLimiter, traceId, "NBP concurrency limit reached");
+            throw ConcurrencyLimitExceededException.INSTANCE;
+        }
+
+        logger.debug("{} - Waiting for the pending fetch of currency {}", traceId, currencyCode);
+        try {
+            return inProgress.get(fetchTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
             }
+            if (ex.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new CurrencyConversionServiceException("Failed to convert currency: " + ex.getMessage(), ex);
+        } catch (TimeoutException ex) {
+            throw new CurrencyConversionServiceException("Timed out waiting for the exchange rate of currency: " + currencyCode, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CurrencyConversionServiceException("Interrupted while waiting for the exchange rate of currency: " + currencyCode, ex);
+        } finally {
+            // waiting says nothing about NBP latency, so the permit is released without a sample
+            concurrencyLimiter.onIgnore();
+        }
+    }
 
-            BigDecimal convertedAmount = CurrencyConversions.convert(money.amount(), midRate, RoundingMode.HALF_DOWN);
-            logger.info("{} - Converted amount {}", traceId, convertedAmount);
+    private BigDecimal fetchRate(String currencyCode, String traceId) {
+        if (!concurrencyLimiter.tryAcquire()) {
+            logRejection(concurrencyLimitLogLimiter, traceId, "NBP concurrency limit reached");
+            throw ConcurrencyLimitExceededException.INSTANCE;
+        }
 
-            return new Money(convertedAmount, targetCurrency);
-        } catch (Exception ex) {
+        logger.debug("{} - Retrieving new exchange rate for currency {}", traceId, currencyCode);
+        RateWrapper rateWrapper;
+        long start = System.nanoTime();
+        boolean responded = false;
+        boolean overloaded = false;
+        try {
+            rateWrapper = exchangeRatesNbpClient.fetch("A", currencyCode);
+            responded = true;
+        } catch (RuntimeException ex) {
+            overloaded = isOverloaded(ex);
             circuitBreaker.recordFailure();
-            logger.error("{} - Currency conversion failed: {}", traceId, ex.getMessage(), ex);
+            if (fetchErrorLogLimiter.tryAcquire()) {
+                logger.error("{} - Fetching exchange rate for currency {} failed ({} similar errors suppressed)",
+                        traceId, currencyCode, fetchErrorLogLimiter.drainSuppressed(), ex);
+            }
             throw new CurrencyConversionServiceException("Failed to convert currency: " + ex.getMessage(), ex);
+        } finally {
+            if (responded) {
+                concurrencyLimiter.onSuccess(System.nanoTime() - start);
+            } else if (overloaded) {
+                concurrencyLimiter.onFailure();
+            } else {
+                concurrencyLimiter.onIgnore();
+            }
+        }
+
+        BigDecimal midRate = rateWrapper == null || rateWrapper.rates() == null || rateWrapper.rates().isEmpty()
+                ? null
+                : rateWrapper.rates().get(0).mid();
+        if (midRate == null || midRate.signum() == 0) {
+            circuitBreaker.recordFailure();
+            if (fetchErrorLogLimiter.tryAcquire()) {
+                logger.error("{} - No exchange rate available for currency {} ({} similar errors suppressed)",
+                        traceId, currencyCode, fetchErrorLogLimiter.drainSuppressed());
+            }
+            throw NoExchangeRateException.INSTANCE;
+        }
+
+        Instant fetchedTime = Instant.now();
+        exchangeRateCache.putRate(currencyCode, midRate, fetchedTime);
+        logger.info("{} - Retrieved new exchange rate {} for currency {}", traceId, midRate, currencyCode);
+        circuitBreaker.reset();
+
+        shareRate(currencyCode, midRate, fetchedTime, traceId);
+        return midRate;
+    }
+
+    /**
+     * The rate is already cached at this point, so failing to share it with the peers must not fail the request.
+     */
+    private void shareRate(String currencyCode, BigDecimal midRate, Instant fetchedTime, String traceId) {
+        try {
+            rateSnapshotPublisher.publish(new RateSnapshot(currencyCode, midRate, fetchedTime));
+        } catch (RuntimeException ex) {
+            logger.warn("{} - Sharing exchange rate for currency {} with peers failed: {}", traceId, currencyCode, ex.getMessage());
+        }
+    }
+
+    /**
+     * Only timeouts, IO errors and 5xx responses say something about NBP being overloaded. A 4xx answer (e.g. 404 for
+     * a currency NBP does not publish) came back normally, so it must not shrink the concurrency limit.
+     */
+    private static boolean isOverloaded(RuntimeException ex) {
+        return ex instanceof RetryableException
+                || ex instanceof FeignException feignException && feignException.status() >= 500;
+    }
+
+    /**
+     * Rejections are expected and identical while they last: they are not counted as NBP failures and they are logged
+     * without a stack trace, at most once per interval.
+     */
+    private void logRejection(LogRateLimiter logLimiter, String traceId, String reason) {
+        if (logLimiter.tryAcquire()) {
+            logger.warn("{} - Failing fast, {} ({} similar errors suppressed)", traceId, reason, logLimiter.drainSuppressed());
         }
     }
-}
\ No newline at end of file
+}
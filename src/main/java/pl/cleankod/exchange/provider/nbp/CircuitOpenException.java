@@ -0,0 +1,13 @@
+package pl.cleankod.exchange.provider.nbp;
+
+/**
+ * Thrown while the NBP circuit breaker is open. A single stackless instance is shared by all requests, so failing
+ * fast costs no allocation and no stack walk.
+ */
+public class CircuitOpenException extends CurrencyConversionServiceException {
+  public static final CircuitOpenException INSTANCE = new CircuitOpenException();
+
+  private CircuitOpenException() {
+    super("Service is unavailable", false);
+  }
+}
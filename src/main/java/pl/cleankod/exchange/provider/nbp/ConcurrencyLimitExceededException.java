@@ -0,0 +1,13 @@
+package pl.cleankod.exchange.provider.nbp;
+
+/**
+ * Thrown when a request is shed because too many NBP calls are already pending. A single stackless instance is shared
+ * by all requests, so shedding costs no allocation and no stack walk.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+  public static final ConcurrencyLimitExceededException INSTANCE = new ConcurrencyLimitExceededException();
+
+  private ConcurrencyLimitExceededException() {
+    super("Too many pending exchange rate requests", null, false, false);
+  }
+}
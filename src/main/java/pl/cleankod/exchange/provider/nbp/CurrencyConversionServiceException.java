@@ -8,4 +8,8 @@ public class CurrencyConversionServiceException extends RuntimeException {
   public CurrencyConversionServiceException(String message, Throwable cause) {
     super(message, cause);
   }
+
+  protected CurrencyConversionServiceException(String message, boolean writableStackTrace) {
+    super(message, null, false, writableStackTrace);
+  }
 }
@@ -0,0 +1,13 @@
+package pl.cleankod.exchange.provider.nbp;
+
+/**
+ * Thrown when NBP answers without a usable rate. A single stackless instance is shared by all requests, so the
+ * failure costs no allocation and no stack walk; the currency is only reported in the log.
+ */
+public class NoExchangeRateException extends CurrencyConversionServiceException {
+  public static final NoExchangeRateException INSTANCE = new NoExchangeRateException();
+
+  private NoExchangeRateException() {
+    super("No exchange rate available", false);
+  }
+}
@@ -0,0 +1,66 @@
+package pl.cleankod.exchange.provider.peer;
+
+import pl.cleankod.util.Preconditions;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * A single exchange rate as fetched from NBP by one of the replicas. The fetch time doubles as the snapshot
+ * version: a replica only adopts snapshots newer than what it already has cached.
+ * <p>
+ * Wire layout (big-endian):
+ * <pre>
+ * version:1 | fetchedTime:8 (epoch millis) | currencyCode:3 (ASCII) | rate.unscaled:8 | rate.scale:1
+ * </pre>
+ */
+public record RateSnapshot(String currencyCode, BigDecimal rate, Instant fetchedTime) {
+    public static final byte VERSION = 1;
+    public static final int ENCODED_LENGTH = 1 + 8 + 3 + 8 + 1;
+
+    public RateSnapshot {
+        Preconditions.requireNonNull(currencyCode);
+        Preconditions.requireNonNull(rate);
+        Preconditions.requireNonNull(fetchedTime);
+        if (rate.signum() <= 0) {
+            throw new IllegalArgumentException("The rate must be positive: " + rate);
+        }
+    }
+
+    public byte[] encode() {
+        if (currencyCode.length() != 3) {
+            throw new IllegalArgumentException("The currency code must have 3 characters: " + currencyCode);
+        }
+        if (rate.scale() < Byte.MIN_VALUE || rate.scale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("The rate scale cannot be encoded: " + rate.scale());
+        }
+
+        return ByteBuffer.allocate(ENCODED_LENGTH)
+                .put(VERSION)
+                .putLong(fetchedTime.toEpochMilli())
+                .put(currencyCode.getBytes(StandardCharsets.US_ASCII))
+                .putLong(rate.unscaledValue().longValueExact())
+                .put((byte) rate.scale())
+                .array();
+    }
+
+    public static RateSnapshot decode(byte[] payload, int offset, int length) {
+        if (length != ENCODED_LENGTH) {
+            throw new IllegalArgumentException("Unexpected snapshot length: " + length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload, offset, length);
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+        }
+
+        Instant fetchedTime = Instant.ofEpochMilli(buffer.getLong());
+        byte[] currencyCode = new byte[3];
+        buffer.get(currencyCode);
+        BigDecimal rate = BigDecimal.valueOf(buffer.getLong(), buffer.get());
+        return new RateSnapshot(new String(currencyCode, StandardCharsets.US_ASCII), rate, fetchedTime);
+    }
+}
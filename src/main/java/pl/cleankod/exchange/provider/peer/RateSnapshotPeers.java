@@ -0,0 +1,146 @@
+package pl.cleankod.exchange.provider.peer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.cleankod.util.ExchangeRateCache;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shares freshly fetched rates with a static list of peer replicas over UDP and adopts the rates pushed by them.
+ * <p>
+ * Every datagram is a {@link RateSnapshot} followed by its HMAC-SHA256 computed with a secret shared by all replicas;
+ * datagrams with a missing or wrong signature are dropped. The source address is checked against the configured peers
+ * as well, but only as a cheap first filter since it can be spoofed. Delivery is best-effort: a lost datagram just
+ * means the peer fetches the rate from NBP itself.
+ */
+public class RateSnapshotPeers implements RateSnapshotPublisher, AutoCloseable {
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+    private static final int MIN_SECRET_LENGTH = 16;
+    private static final int DATAGRAM_LENGTH = RateSnapshot.ENCODED_LENGTH + MAC_LENGTH;
+
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers;
+    private final Set<SocketAddress> trustedAddresses;
+    private final SecretKeySpec secret;
+    private final ExchangeRateCache exchangeRateCache;
+    private final Thread receiver;
+
+    private static final Logger logger = LoggerFactory.getLogger(RateSnapshotPeers.class);
+
+    public RateSnapshotPeers(InetSocketAddress bindAddress,
+                             List<InetSocketAddress> peers,
+                             byte[] secret,
+                             ExchangeRateCache exchangeRateCache) throws SocketException {
+        if (secret.length < MIN_SECRET_LENGTH) {
+            throw new IllegalArgumentException("The peers secret must have at least " + MIN_SECRET_LENGTH + " bytes");
+        }
+        for (InetSocketAddress peer : peers) {
+            // resolved once here: an unresolved address could neither be sent to nor recognised as a trusted source
+            if (peer.isUnresolved()) {
+                throw new IllegalArgumentException("Cannot resolve rate snapshot peer: " + peer);
+            }
+        }
+        this.secret = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.peers = List.copyOf(peers);
+        this.trustedAddresses = Set.copyOf(peers);
+        this.exchangeRateCache = exchangeRateCache;
+        this.socket = new DatagramSocket(bindAddress);
+        this.receiver = new Thread(this::receive, "rate-snapshot-receiver");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+
+        logger.info("RateSnapshotPeers listening on {} with peers: {}", socket.getLocalSocketAddress(), peers);
+    }
+
+    @Override
+    public void publish(RateSnapshot snapshot) {
+        byte[] encoded = snapshot.encode();
+        byte[] payload = Arrays.copyOf(encoded, DATAGRAM_LENGTH);
+        System.arraycopy(sign(encoded), 0, payload, encoded.length, MAC_LENGTH);
+
+        for (InetSocketAddress peer : peers) {
+            try {
+                socket.send(new DatagramPacket(payload, payload.length, peer));
+            } catch (IOException | RuntimeException ex) {
+                // one failing peer must not keep the snapshot from the others
+                logger.warn("Failed to send rate snapshot {} to peer {}: {}", snapshot, peer, ex.getMessage());
+            }
+        }
+        logger.debug("Published rate snapshot {} to {} peers", snapshot, peers.size());
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+
+    private void receive() {
+        // one byte larger than a datagram so oversized ones are detected instead of silently truncated
+        byte[] buffer = new byte[DATAGRAM_LENGTH + 1];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+
+                if (!trustedAddresses.contains(packet.getSocketAddress())) {
+                    logger.warn("Ignoring rate snapshot from unknown address {}", packet.getSocketAddress());
+                    continue;
+                }
+                if (packet.getLength() != DATAGRAM_LENGTH) {
+                    logger.warn("Ignoring rate snapshot of unexpected length {} from {}", packet.getLength(), packet.getSocketAddress());
+                    continue;
+                }
+
+                byte[] encoded = Arrays.copyOfRange(buffer, 0, RateSnapshot.ENCODED_LENGTH);
+                byte[] signature = Arrays.copyOfRange(buffer, RateSnapshot.ENCODED_LENGTH, DATAGRAM_LENGTH);
+                if (!MessageDigest.isEqual(sign(encoded), signature)) {
+                    logger.warn("Ignoring rate snapshot with an invalid signature from {}", packet.getSocketAddress());
+                    continue;
+                }
+
+                RateSnapshot snapshot = RateSnapshot.decode(encoded, 0, encoded.length);
+                if (exchangeRateCache.adoptRate(snapshot.currencyCode(), snapshot.rate(), snapshot.fetchedTime())) {
+                    logger.info("Adopted rate snapshot {} from peer {}", snapshot, packet.getSocketAddress());
+                } else {
+                    logger.debug("Ignoring outdated or future rate snapshot {} from peer {}", snapshot, packet.getSocketAddress());
+                }
+            } catch (IOException ex) {
+                if (!socket.isClosed()) {
+                    logger.warn("Failed to receive rate snapshot: {}", ex.getMessage());
+                }
+            } catch (IllegalArgumentException ex) {
+                logger.warn("Ignoring malformed rate snapshot from {}: {}", packet.getSocketAddress(), ex.getMessage());
+            } catch (RuntimeException ex) {
+                // anything else only loses this datagram, the receiver thread has to keep running
+                logger.error("Failed to process rate snapshot from {}", packet.getSocketAddress(), ex);
+            }
+        }
+    }
+
+    private byte[] sign(byte[] encoded) {
+        try {
+            // Mac instances are not thread-safe and publishing happens on request threads, so each call gets its own
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secret);
+            return mac.doFinal(encoded);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Cannot compute the rate snapshot signature", ex);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package pl.cleankod.exchange.provider.peer;
+
+public interface RateSnapshotPublisher {
+    RateSnapshotPublisher NONE = snapshot -> {};
+
+    void publish(RateSnapshot snapshot);
+}
@@ -0,0 +1,104 @@
+package pl.cleankod.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency limit that adapts to the observed latency (gradient approach). While the latency of recent calls stays
+ * close to its long-term average the limit keeps growing; once calls start queueing up and latency rises, the limit
+ * shrinks proportionally. Failed calls back the limit off multiplicatively.
+ * <p>
+ * Callers that do not get a permit are expected to fail fast instead of waiting.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_RTT_WEIGHT = 0.05;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejections = new LongAdder();
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longRttNanos;
+
+    public AdaptiveConcurrencyLimiter(Integer initialLimit, Integer minLimit, Integer maxLimit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("The limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejections.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void onSuccess(long rttNanos) {
+        int inFlightAtSample = inFlight.getAndDecrement();
+        update(rttNanos, inFlightAtSample);
+    }
+
+    public void onFailure() {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            applyLimit(estimatedLimit * BACKOFF_RATIO);
+        }
+    }
+
+    /**
+     * Releases the permit of a call whose outcome says nothing about the downstream load, leaving the limit as is.
+     */
+    public void onIgnore() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtSample) {
+        double rtt = Math.max(rttNanos, 1);
+        longRttNanos = longRttNanos == 0 ? rtt : longRttNanos * (1 - LONG_RTT_WEIGHT) + rtt * LONG_RTT_WEIGHT;
+        if (longRttNanos / rtt > 2) {
+            // latency dropped well below the average (e.g. after an outage), let the average catch up faster
+            longRttNanos *= 0.95;
+        }
+
+        if (inFlightAtSample < estimatedLimit / 2) {
+            // the limit is not what bounds the traffic right now, so the sample says nothing about it
+            return;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, longRttNanos / rtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        applyLimit(estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+    }
+
+    private void applyLimit(double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -1,14 +1,12 @@
 package pl.cleankod.util;
 
-import java.time.Instant;
-
 public class CircuitBreaker {
     private final Long failureTimeout;
     private final Integer failureThreshold;
 
     private int failureCount = 0;
-    private Instant lastFailureTime = Instant.now();
-    private CircuitState circuitState = CircuitState.CLOSED;
+    private volatile long openUntilMillis = 0;
+    private volatile CircuitState circuitState = CircuitState.CLOSED;
 
 
     public CircuitBreaker(Long failureTimeout, Integer failureThreshold) {
@@ -16,31 +14,47 @@ public class CircuitBreaker {
         this.failureThreshold = failureThreshold;
     }
 
+    /**
+     * Once the failure timeout has passed, a single trial call is let through while the circuit is open; everyone else
+     * keeps failing fast until the trial either resets the circuit or records a failure. A trial that does neither
+     * within another failure timeout is given up on and the next caller gets to try.
+     */
     public boolean isAvailable() {
-        if (circuitState == CircuitState.OPEN) {
-            if (Instant.now().isAfter(lastFailureTime.plusMillis(failureTimeout))) {
-                circuitState = CircuitState.HALF_OPEN;
-            } else {
-                return false;
-            }
+        if (circuitState == CircuitState.CLOSED) {
+            return true;
         }
-
-        return true;
+        if (System.currentTimeMillis() < openUntilMillis) {
+            return false;
+        }
+        return tryStartTrial();
     }
 
-    public void recordFailure() {
+    public synchronized void recordFailure() {
         failureCount++;
-        lastFailureTime = Instant.now();
+        openUntilMillis = System.currentTimeMillis() + failureTimeout;
         if (failureCount >= failureThreshold) {
             circuitState = CircuitState.OPEN;
         }
     }
 
-    public void reset() {
+    public synchronized void reset() {
         failureCount = 0;
         circuitState = CircuitState.CLOSED;
     }
 
+    private synchronized boolean tryStartTrial() {
+        if (circuitState == CircuitState.CLOSED) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now < openUntilMillis) {
+            return false;
+        }
+        circuitState = CircuitState.HALF_OPEN;
+        openUntilMillis = now + failureTimeout;
+        return true;
+    }
+
     private enum CircuitState {
         CLOSED,
         OPEN,
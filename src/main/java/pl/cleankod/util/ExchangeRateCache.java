@@ -1,30 +1,70 @@
 package pl.cleankod.util;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class ExchangeRateCache {
+    private static final Duration MAX_CLOCK_SKEW = Duration.ofSeconds(5);
 
     private final Map<String, CachedData> exchangeRateCache = new ConcurrentHashMap<>();
     private final Long cacheRefresh;
+    private final Long adoptedGrace;
 
     public ExchangeRateCache(Long cacheRefresh) {
+        this(cacheRefresh, 0L);
+    }
+
+    /**
+     * @param cacheRefresh lifetime in milliseconds of a cached rate
+     * @param adoptedGrace upper bound in milliseconds of the random extra lifetime given to adopted rates. The replica
+     *                     that fetched a rate itself sees it expire first, refreshes it and shares the new one before
+     *                     the replicas that adopted it need to call NBP on their own.
+     */
+    public ExchangeRateCache(Long cacheRefresh, Long adoptedGrace) {
         this.cacheRefresh = cacheRefresh;
+        this.adoptedGrace = adoptedGrace;
     }
 
     public BigDecimal getRate(String currencyCode) {
         CachedData cachedData = exchangeRateCache.get(currencyCode);
-        if (cachedData != null && Instant.now().isBefore(cachedData.fetchedTime.plusSeconds(cacheRefresh))) {
+        if (cachedData != null && Instant.now().isBefore(cachedData.expiryTime)) {
             return cachedData.rate;
         }
         return null;
     }
 
     public void putRate(String currencyCode, BigDecimal rate) {
-        exchangeRateCache.put(currencyCode, new CachedData(rate, Instant.now()));
+        putRate(currencyCode, rate, Instant.now());
+    }
+
+    public void putRate(String currencyCode, BigDecimal rate, Instant fetchedTime) {
+        exchangeRateCache.put(currencyCode, new CachedData(rate, fetchedTime, fetchedTime.plusMillis(cacheRefresh)));
+    }
+
+    /**
+     * Stores the rate only if it was fetched later than the cached one, so out-of-order or replayed
+     * snapshots never roll the cache back. A fetch time more than {@link #MAX_CLOCK_SKEW} in the future is
+     * rejected and a smaller skew is clamped to now, so a fast peer clock cannot extend the rate's lifetime.
+     *
+     * @return {@code true} if the rate was stored
+     */
+    public boolean adoptRate(String currencyCode, BigDecimal rate, Instant fetchedTime) {
+        Instant now = Instant.now();
+        if (fetchedTime.isAfter(now.plus(MAX_CLOCK_SKEW))) {
+            return false;
+        }
+        Instant adoptedFetchedTime = fetchedTime.isAfter(now) ? now : fetchedTime;
+        long grace = adoptedGrace > 0 ? ThreadLocalRandom.current().nextLong(adoptedGrace / 2, adoptedGrace + 1) : 0;
+        Instant expiryTime = adoptedFetchedTime.plusMillis(cacheRefresh).plusMillis(grace);
+
+        CachedData offered = new CachedData(rate, adoptedFetchedTime, expiryTime);
+        return exchangeRateCache.merge(currencyCode, offered,
+                (current, candidate) -> candidate.fetchedTime.isAfter(current.fetchedTime) ? candidate : current) == offered;
     }
 
-    private record CachedData(BigDecimal rate, Instant fetchedTime) {}
+    private record CachedData(BigDecimal rate, Instant fetchedTime, Instant expiryTime) {}
 }
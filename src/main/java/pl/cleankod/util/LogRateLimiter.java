@@ -0,0 +1,36 @@
+package pl.cleankod.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets at most one log statement through per interval and counts the suppressed ones, so a burst of identical
+ * errors during an outage produces a single line instead of one per request.
+ */
+public class LogRateLimiter {
+    private final long intervalNanos;
+    private final AtomicLong nextAllowedNanos;
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogRateLimiter(Long intervalMillis) {
+        this.intervalNanos = intervalMillis * 1_000_000L;
+        this.nextAllowedNanos = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        long nextAllowed = nextAllowedNanos.get();
+        if (now - nextAllowed >= 0 && nextAllowedNanos.compareAndSet(nextAllowed, now + intervalNanos)) {
+            return true;
+        }
+        suppressed.increment();
+        return false;
+    }
+
+    /**
+     * @return the number of statements suppressed since the previous call
+     */
+    public long drainSuppressed() {
+        return suppressed.sumThenReset();
+    }
+}
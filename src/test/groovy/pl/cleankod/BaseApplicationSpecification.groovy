@@ -32,6 +32,12 @@ abstract class BaseApplicationSpecification extends Specification {
     return execute(httpGet)
   }
 
+  static HttpResponse getResponse(String path, String accept) {
+    HttpGet httpGet = new HttpGet(baseUrl + path)
+    httpGet.setHeader("Accept", accept)
+    return execute(httpGet)
+  }
+
   static <T> T transform(HttpResponse httpResponse, Class<T> classOfT) {
     def response = EntityUtils.toString(httpResponse.getEntity())
     return objectMapper.readValue(response, classOfT)
@@ -1,16 +1,24 @@
 package pl.cleankod.exchange
 
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
 import com.github.tomakehurst.wiremock.WireMockServer
 import com.github.tomakehurst.wiremock.client.WireMock
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration
 import org.apache.http.HttpResponse
+import org.apache.http.util.EntityUtils
 import pl.cleankod.BaseApplicationSpecification
 import pl.cleankod.exchange.core.domain.Account
 import pl.cleankod.exchange.core.domain.Money
 import pl.cleankod.exchange.core.dto.AccountDto
 import pl.cleankod.exchange.core.dto.MoneyDto
+import pl.cleankod.exchange.entrypoint.codec.AccountBinaryCodec
+import pl.cleankod.exchange.entrypoint.codec.AccountBinaryHttpMessageConverter
+import spock.util.concurrent.PollingConditions
 
 import java.nio.charset.StandardCharsets
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
 
 class AccountSpecification extends BaseApplicationSpecification {
 
@@ -64,6 +72,35 @@ class AccountSpecification extends BaseApplicationSpecification {
         )
     }
 
+    def "should return an account by ID in the binary encoding"() {
+        given:
+        def accountId = "fa07c538-8ce4-11ec-9ad5-4f5a625cd744"
+
+        when:
+        HttpResponse response = getResponse("/accounts/${accountId}", AccountBinaryHttpMessageConverter.MEDIA_TYPE_VALUE)
+
+        then:
+        response.getStatusLine().getStatusCode() == 200
+        response.getFirstHeader("Content-Type").getValue() == AccountBinaryHttpMessageConverter.MEDIA_TYPE_VALUE
+        AccountBinaryCodec.decode(EntityUtils.toByteArray(response.getEntity())) == new Account(
+                Account.Id.of(accountId),
+                Account.Number.of("65 1090 1665 0000 0001 0373 7343"),
+                Money.of("123.45", "PLN")
+        )
+    }
+
+    def "should return an account by ID as JSON by default"() {
+        given:
+        def accountId = "fa07c538-8ce4-11ec-9ad5-4f5a625cd744"
+
+        when:
+        HttpResponse response = getResponse("/accounts/${accountId}", "*/*")
+
+        then:
+        response.getStatusLine().getStatusCode() == 200
+        response.getFirstHeader("Content-Type").getValue() == "application/json"
+    }
+
     def "should return an account by number"() {
         given:
         def accountNumberValue = "75 1240 2034 1111 0000 0306 8582"
@@ -114,4 +151,121 @@ class AccountSpecification extends BaseApplicationSpecification {
         then:
         response.getStatusLine().getStatusCode() == 404
     }
+
+    def "should shed requests over the NBP concurrency limit without opening the circuit breaker"() {
+        given:
+        def accountId = "fa07c538-8ce4-11ec-9ad5-4f5a625cd744"
+        stubRate("USD", "3.9800", 2000)
+        stubRate("CHF", "4.3100", 2000)
+        stubRate("JPY", "0.0345", 0)
+        def executor = Executors.newFixedThreadPool(2)
+
+        when:
+        // the test limit is 2, so these two slow NBP calls take every permit
+        def slowResponses = ["USD", "CHF"].collect { currency ->
+            executor.submit({ -> getResponse("/accounts/${accountId}?currency=${currency}") } as Callable<HttpResponse>)
+        }
+        new PollingConditions(timeout: 5).eventually {
+            assert metricValue("nbp.concurrency.in-flight") == 2
+        }
+        // more rejections than the breaker threshold: if they counted as failures the last ones would see an open circuit
+        def shedResponses = (1..4).collect { getResponse("/accounts/${accountId}?currency=JPY") }
+        def completedResponses = slowResponses.collect { it.get() }
+        HttpResponse response = getResponse("/accounts/${accountId}?currency=JPY")
+
+        then:
+        shedResponses.every { it.getStatusLine().getStatusCode() == 503 }
+        shedResponses.every { it.getFirstHeader("Retry-After").getValue() == "1" }
+        shedResponses.every { transformError(it).message() == "Too many pending exchange rate requests" }
+        completedResponses.every { it.getStatusLine().getStatusCode() == 200 }
+        response.getStatusLine().getStatusCode() == 200
+        nbpRequestCount("JPY") == 1
+        metricValue("nbp.concurrency.rejections") >= 4
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "should shed requests waiting on a slow NBP call for the same currency over the concurrency limit"() {
+        given:
+        def accountId = "fa07c538-8ce4-11ec-9ad5-4f5a625cd744"
+        stubRate("NOK", "0.4300", 2000)
+        def executor = Executors.newFixedThreadPool(4)
+
+        when:
+        def fetchingResponse = executor.submit({ -> getResponse("/accounts/${accountId}?currency=NOK") } as Callable<HttpResponse>)
+        new PollingConditions(timeout: 5).eventually {
+            assert metricValue("nbp.concurrency.in-flight") == 1
+        }
+        // the test limit is 2: one of these may wait for the pending NBP call, the others must be shed
+        def waitingResponses = (1..3).collect {
+            executor.submit({ -> getResponse("/accounts/${accountId}?currency=NOK") } as Callable<HttpResponse>)
+        }.collect { it.get() }
+
+        then:
+        fetchingResponse.get().getStatusLine().getStatusCode() == 200
+        waitingResponses.count { it.getStatusLine().getStatusCode() == 200 } == 1
+        def shedResponses = waitingResponses.findAll { it.getStatusLine().getStatusCode() == 503 }
+        shedResponses.size() == 2
+        shedResponses.every { it.getFirstHeader("Retry-After").getValue() == "1" }
+        shedResponses.every { transformError(it).message() == "Too many pending exchange rate requests" }
+        nbpRequestCount("NOK") == 1
+        metricValue("nbp.concurrency.in-flight") == 0
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "should expose the NBP concurrency limiter metrics"() {
+        when:
+        def metrics = readJson(getResponse("/actuator/metrics"))
+
+        then:
+        metrics.get("names").collect { it.asText() }
+                .containsAll(["nbp.concurrency.limit", "nbp.concurrency.in-flight", "nbp.concurrency.rejections"])
+    }
+
+    def "should fail fast while NBP is unavailable"() {
+        given:
+        def accountId = "fa07c538-8ce4-11ec-9ad5-4f5a625cd744"
+        wireMockServer.stubFor(
+                WireMock.get("/exchangerates/rates/A/GBP/2022-02-08")
+                        .willReturn(WireMock.serverError())
+        )
+
+        when:
+        def failedResponses = (1..3).collect { getResponse("/accounts/${accountId}?currency=GBP") }
+        HttpResponse response = getResponse("/accounts/${accountId}?currency=GBP")
+
+        then:
+        failedResponses.every { it.getStatusLine().getStatusCode() == 500 }
+        response.getStatusLine().getStatusCode() == 503
+        response.getFirstHeader("Retry-After").getValue() == "1"
+        transformError(response).message() == "Service is unavailable"
+        wireMockServer.countRequestsMatching(
+                WireMock.getRequestedFor(WireMock.urlEqualTo("/exchangerates/rates/A/GBP/2022-02-08")).build()
+        ).getCount() == 3
+    }
+
+    private static void stubRate(String currency, String mid, int delayMillis) {
+        def body = "{\"table\":\"A\",\"code\":\"${currency}\",\"rates\":[{\"no\":\"026/A/NBP/2022\",\"effectiveDate\":\"2022-02-08\",\"mid\":${mid}}]}"
+        wireMockServer.stubFor(
+                WireMock.get("/exchangerates/rates/A/${currency}/2022-02-08")
+                        .willReturn(WireMock.ok(body.toString()).withFixedDelay(delayMillis))
+        )
+    }
+
+    private static int nbpRequestCount(String currency) {
+        wireMockServer.countRequestsMatching(
+                WireMock.getRequestedFor(WireMock.urlEqualTo("/exchangerates/rates/A/${currency}/2022-02-08")).build()
+        ).getCount()
+    }
+
+    private static double metricValue(String name) {
+        readJson(getResponse("/actuator/metrics/${name}")).get("measurements").get(0).get("value").asDouble()
+    }
+
+    private static JsonNode readJson(HttpResponse response) {
+        new ObjectMapper().readTree(EntityUtils.toString(response.getEntity()))
+    }
 }
@@ -0,0 +1,89 @@
+package pl.cleankod.exchange.entrypoint.codec
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import pl.cleankod.exchange.core.domain.Account
+import pl.cleankod.exchange.core.domain.Money
+import spock.lang.Specification
+
+class AccountBinaryCodecSpecification extends Specification {
+
+    def "should decode what was encoded"() {
+        given:
+        def account = account(givenNumber, Money.of(givenAmount, givenCurrency))
+
+        when:
+        def decoded = AccountBinaryCodec.decode(AccountBinaryCodec.encode(account))
+
+        then:
+        decoded == account
+
+        where:
+        givenNumber                        | givenAmount | givenCurrency
+        "65 1090 1665 0000 0001 0373 7343" | "123.45"    | "PLN"
+        "75124020341111000003068582"       | "27.16"     | "EUR"
+        "75 1240 2034 1111 0000 0306 8582" | "-0.10"     | "USD"
+        "75 1240 2034 1111 0000 0306 8582" | "1E+3"      | "JPY"
+    }
+
+    def "should be smaller than the JSON representation"() {
+        given:
+        def account = account("65 1090 1665 0000 0001 0373 7343", Money.of("27.16", "EUR"))
+
+        expect:
+        AccountBinaryCodec.encode(account).length == 61
+        new ObjectMapper().writeValueAsBytes(account.toDto()).length == 135
+    }
+
+    def "should write the same JSON as the DTO"() {
+        given:
+        def account = account("65 1090 1665 0000 0001 0373 7343", Money.of("27.16", "EUR"))
+
+        expect:
+        new ObjectMapper().registerModule(new AccountJsonModule()).writeValueAsBytes(account) ==
+                new ObjectMapper().writeValueAsBytes(account.toDto())
+    }
+
+    def "should not encode an amount that does not fit in a long"() {
+        given:
+        def account = account("65 1090 1665 0000 0001 0373 7343", Money.of("92233720368547758.08", "PLN"))
+
+        when:
+        AccountBinaryCodec.encode(account)
+
+        then:
+        thrown(ArithmeticException)
+    }
+
+    def "should not encode a currency whose numeric code is shared"() {
+        given:
+        def account = account("65 1090 1665 0000 0001 0373 7343", Money.of("1.00", givenCurrency))
+
+        when:
+        AccountBinaryCodec.encode(account)
+
+        then:
+        def exception = thrown(IllegalArgumentException)
+        exception.message.startsWith("The currency has no unambiguous numeric code")
+
+        where:
+        givenCurrency << ["CSD", "YUM"]
+    }
+
+    def "should not decode a malformed payload"() {
+        when:
+        AccountBinaryCodec.decode(givenPayload as byte[])
+
+        then:
+        def exception = thrown(IllegalArgumentException)
+        exception.message.startsWith(expectedMessage)
+
+        where:
+        givenPayload || expectedMessage
+        [2, 0, 0]    || "Unsupported encoding version"
+        [1, 0, 0]    || "The payload is truncated"
+    }
+
+    private static Account account(String number, Money balance) {
+        new Account(Account.Id.of("fa07c538-8ce4-11ec-9ad5-4f5a625cd744"), Account.Number.of(number), balance)
+    }
+}
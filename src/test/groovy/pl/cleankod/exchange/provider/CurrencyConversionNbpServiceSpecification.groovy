@@ -0,0 +1,117 @@
+package pl.cleankod.exchange.provider
+
+import com.github.tomakehurst.wiremock.WireMockServer
+import com.github.tomakehurst.wiremock.client.WireMock
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration
+import feign.Feign
+import feign.httpclient.ApacheHttpClient
+import feign.jackson.JacksonDecoder
+import pl.cleankod.exchange.core.domain.Money
+import pl.cleankod.exchange.provider.nbp.ExchangeRatesNbpClient
+import pl.cleankod.exchange.provider.peer.RateSnapshotPeers
+import pl.cleankod.exchange.provider.peer.RateSnapshotPublisher
+import pl.cleankod.util.AdaptiveConcurrencyLimiter
+import pl.cleankod.util.ExchangeRateCache
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class CurrencyConversionNbpServiceSpecification extends Specification {
+
+    private static final String EUR_PATH = "/exchangerates/rates/A/EUR/2022-02-08"
+    private static final String EUR_BODY = "{\"table\":\"A\",\"currency\":\"euro\",\"code\":\"EUR\",\"rates\":[{\"no\":\"026/A/NBP/2022\",\"effectiveDate\":\"2022-02-08\",\"mid\":4.5452}]}"
+    private static final byte[] SECRET = "service-test-secret-0123456789".getBytes(StandardCharsets.UTF_8)
+
+    private WireMockServer wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort())
+
+    def setup() {
+        wireMockServer.start()
+    }
+
+    def cleanup() {
+        wireMockServer.stop()
+    }
+
+    def "should not call NBP when a peer has already shared the rate"() {
+        given:
+        wireMockServer.stubFor(WireMock.get(EUR_PATH).willReturn(WireMock.ok(EUR_BODY)))
+        def firstAddress = new InetSocketAddress("localhost", freePort())
+        def secondAddress = new InetSocketAddress("localhost", freePort())
+        def firstCache = new ExchangeRateCache(600_000)
+        def secondCache = new ExchangeRateCache(600_000)
+        def firstPeer = new RateSnapshotPeers(firstAddress, [secondAddress], SECRET, firstCache)
+        def secondPeer = new RateSnapshotPeers(secondAddress, [firstAddress], SECRET, secondCache)
+        def firstReplica = service(firstCache, firstPeer)
+        def secondReplica = service(secondCache, secondPeer)
+
+        when:
+        def firstResult = firstReplica.convert(Money.of("123.45", "PLN"), Currency.getInstance("EUR"), "trace-1")
+        new PollingConditions(timeout: 5).eventually {
+            assert secondCache.getRate("EUR") != null
+        }
+        def secondResult = secondReplica.convert(Money.of("123.45", "PLN"), Currency.getInstance("EUR"), "trace-2")
+
+        then:
+        firstResult == secondResult
+        nbpRequestCount() == 1
+
+        cleanup:
+        firstPeer.close()
+        secondPeer.close()
+    }
+
+    def "should share a single NBP call between concurrent cache misses"() {
+        given:
+        wireMockServer.stubFor(WireMock.get(EUR_PATH).willReturn(WireMock.ok(EUR_BODY).withFixedDelay(300)))
+        def replica = service(new ExchangeRateCache(600_000), RateSnapshotPublisher.NONE)
+        def executor = Executors.newFixedThreadPool(8)
+
+        when:
+        def results = executor.invokeAll((1..8).collect { index ->
+            { -> replica.convert(Money.of("123.45", "PLN"), Currency.getInstance("EUR"), "trace-${index}") } as Callable<Money>
+        }).collect { it.get() }
+
+        then:
+        results.toSet().size() == 1
+        nbpRequestCount() == 1
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "should serve a fetched rate even if sharing it with peers fails"() {
+        given:
+        wireMockServer.stubFor(WireMock.get(EUR_PATH).willReturn(WireMock.ok(EUR_BODY)))
+        def failingPublisher = { snapshot -> throw new IllegalStateException("peers are unreachable") } as RateSnapshotPublisher
+        def replica = service(new ExchangeRateCache(600_000), failingPublisher)
+
+        when:
+        def firstResult = replica.convert(Money.of("123.45", "PLN"), Currency.getInstance("EUR"), "trace-1")
+        def secondResult = replica.convert(Money.of("123.45", "PLN"), Currency.getInstance("EUR"), "trace-2")
+
+        then:
+        firstResult == Money.of("27.16", "EUR")
+        secondResult == firstResult
+        nbpRequestCount() == 1
+    }
+
+    private CurrencyConversionNbpService service(ExchangeRateCache cache, RateSnapshotPublisher publisher) {
+        def client = Feign.builder()
+                .client(new ApacheHttpClient())
+                .decoder(new JacksonDecoder())
+                .target(ExchangeRatesNbpClient, wireMockServer.baseUrl())
+        return new CurrencyConversionNbpService(client, cache, publisher, new AdaptiveConcurrencyLimiter(10, 2, 50),
+                7000L, 300L, 3, 1000L)
+    }
+
+    private int nbpRequestCount() {
+        wireMockServer.countRequestsMatching(WireMock.getRequestedFor(WireMock.urlEqualTo(EUR_PATH)).build()).getCount()
+    }
+
+    private static int freePort() {
+        new DatagramSocket(0).withCloseable { it.localPort }
+    }
+}
@@ -0,0 +1,149 @@
+package pl.cleankod.exchange.provider.peer
+
+import pl.cleankod.util.ExchangeRateCache
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.charset.StandardCharsets
+import java.time.Instant
+import java.time.temporal.ChronoUnit
+
+class RateSnapshotPeersSpecification extends Specification {
+
+    private static final byte[] SECRET = "peers-test-secret-0123456789".getBytes(StandardCharsets.UTF_8)
+
+    private ExchangeRateCache firstCache = new ExchangeRateCache(600_000)
+    private ExchangeRateCache secondCache = new ExchangeRateCache(600_000)
+    private InetSocketAddress firstAddress = new InetSocketAddress("localhost", freePort())
+    private InetSocketAddress secondAddress = new InetSocketAddress("localhost", freePort())
+    private RateSnapshotPeers firstPeer
+    private RateSnapshotPeers secondPeer
+
+    def setup() {
+        firstPeer = new RateSnapshotPeers(firstAddress, [secondAddress], SECRET, firstCache)
+        secondPeer = new RateSnapshotPeers(secondAddress, [firstAddress], SECRET, secondCache)
+    }
+
+    def cleanup() {
+        firstPeer.close()
+        secondPeer.close()
+    }
+
+    def "should adopt a rate published by a peer"() {
+        given:
+        def snapshot = new RateSnapshot("EUR", new BigDecimal("4.5452"), Instant.now().truncatedTo(ChronoUnit.MILLIS))
+
+        when:
+        firstPeer.publish(snapshot)
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert secondCache.getRate("EUR") == new BigDecimal("4.5452")
+        }
+    }
+
+    def "should not replace a newer cached rate with an older snapshot"() {
+        given:
+        def fetchedTime = Instant.now().truncatedTo(ChronoUnit.MILLIS)
+        secondCache.putRate("EUR", new BigDecimal("4.6000"), fetchedTime)
+
+        when:
+        firstPeer.publish(new RateSnapshot("EUR", new BigDecimal("4.5452"), fetchedTime.minusSeconds(1)))
+        firstPeer.publish(new RateSnapshot("USD", new BigDecimal("3.9800"), fetchedTime))
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert secondCache.getRate("USD") == new BigDecimal("3.9800")
+        }
+        secondCache.getRate("EUR") == new BigDecimal("4.6000")
+    }
+
+    def "should ignore a snapshot signed with a different secret"() {
+        given:
+        def forgerAddress = new InetSocketAddress("localhost", freePort())
+        def forgedSecret = "another-secret-0123456789".getBytes(StandardCharsets.UTF_8)
+        def forger = new RateSnapshotPeers(forgerAddress, [secondAddress], forgedSecret, new ExchangeRateCache(600_000))
+        // the forger is even listed as a trusted address, only the signature tells it apart
+        secondPeer.close()
+        secondPeer = new RateSnapshotPeers(secondAddress, [firstAddress, forgerAddress], SECRET, secondCache)
+
+        when:
+        forger.publish(new RateSnapshot("EUR", new BigDecimal("9.9999"), Instant.now()))
+        firstPeer.publish(new RateSnapshot("USD", new BigDecimal("3.9800"), Instant.now()))
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert secondCache.getRate("USD") == new BigDecimal("3.9800")
+        }
+        secondCache.getRate("EUR") == null
+
+        cleanup:
+        forger.close()
+    }
+
+    def "should ignore an unsigned datagram"() {
+        given:
+        def payload = new RateSnapshot("EUR", new BigDecimal("9.9999"), Instant.now()).encode()
+
+        when:
+        // sent from the trusted first peer address, so only the missing signature can get it rejected
+        firstPeer.close()
+        new DatagramSocket(firstAddress).withCloseable { socket ->
+            socket.send(new DatagramPacket(payload, payload.length, secondAddress))
+        }
+        // a signed snapshot sent afterwards from the same address proves the unsigned one was already processed
+        firstPeer = new RateSnapshotPeers(firstAddress, [secondAddress], SECRET, firstCache)
+        firstPeer.publish(new RateSnapshot("USD", new BigDecimal("3.9800"), Instant.now()))
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert secondCache.getRate("USD") == new BigDecimal("3.9800")
+        }
+        secondCache.getRate("EUR") == null
+    }
+
+    def "should decode what was encoded"() {
+        given:
+        def snapshot = new RateSnapshot("EUR", new BigDecimal("4.5452"), Instant.ofEpochMilli(1644314400000L))
+
+        when:
+        def payload = snapshot.encode()
+
+        then:
+        payload.length == RateSnapshot.ENCODED_LENGTH
+        RateSnapshot.decode(payload, 0, payload.length) == snapshot
+    }
+
+    def "should not create a snapshot with a non-positive rate"() {
+        when:
+        new RateSnapshot("EUR", givenRate, Instant.now())
+
+        then:
+        def exception = thrown(IllegalArgumentException)
+        exception.message.startsWith("The rate must be positive")
+
+        where:
+        givenRate << [BigDecimal.ZERO, new BigDecimal("-4.5452")]
+    }
+
+    def "should not start with a short secret"() {
+        when:
+        new RateSnapshotPeers(new InetSocketAddress("localhost", freePort()), [], "short".getBytes(StandardCharsets.UTF_8), firstCache)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should not start with an unresolved peer"() {
+        when:
+        new RateSnapshotPeers(new InetSocketAddress("localhost", freePort()), [InetSocketAddress.createUnresolved("peer.invalid", 9999)], SECRET, firstCache)
+
+        then:
+        def exception = thrown(IllegalArgumentException)
+        exception.message.startsWith("Cannot resolve rate snapshot peer")
+    }
+
+    private static int freePort() {
+        new DatagramSocket(0).withCloseable { it.localPort }
+    }
+}
@@ -0,0 +1,99 @@
+package pl.cleankod.util
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class AdaptiveConcurrencyLimiterSpecification extends Specification {
+
+    def "should reject calls over the limit"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(2, 1, 10)
+
+        when:
+        def results = (1..3).collect { limiter.tryAcquire() }
+
+        then:
+        results == [true, true, false]
+        limiter.getInFlight() == 2
+        limiter.getRejections() == 1
+    }
+
+    def "should grow the limit while latency is stable"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(4, 1, 10)
+
+        when:
+        20.times {
+            4.times { limiter.tryAcquire() }
+            4.times { limiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(50)) }
+        }
+
+        then:
+        limiter.getLimit() > 4
+        limiter.getLimit() <= 10
+        limiter.getInFlight() == 0
+    }
+
+    def "should shrink the limit when latency rises"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(8, 1, 10)
+        20.times { completeCalls(limiter, TimeUnit.MILLISECONDS.toNanos(50)) }
+        def limitBefore = limiter.getLimit()
+
+        when:
+        completeCalls(limiter, TimeUnit.SECONDS.toNanos(5))
+
+        then:
+        limiter.getLimit() < limitBefore
+        limiter.getInFlight() == 0
+    }
+
+    def "should back off on failures but not below the minimum"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(10, 3, 10)
+
+        when:
+        50.times {
+            limiter.tryAcquire()
+            limiter.onFailure()
+        }
+
+        then:
+        limiter.getLimit() == 3
+    }
+
+    def "should release ignored calls without changing the limit"() {
+        given:
+        def limiter = new AdaptiveConcurrencyLimiter(10, 3, 10)
+
+        when:
+        50.times {
+            limiter.tryAcquire()
+            limiter.onIgnore()
+        }
+
+        then:
+        limiter.getLimit() == 10
+        limiter.getInFlight() == 0
+    }
+
+    def "should not create limiter with inconsistent limits"() {
+        when:
+        new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        initialLimit | minLimit | maxLimit
+        5            | 0        | 10
+        5            | 6        | 10
+        11           | 1        | 10
+    }
+
+    private static void completeCalls(AdaptiveConcurrencyLimiter limiter, long rttNanos) {
+        def acquired = (1..limiter.getLimit()).count { limiter.tryAcquire() }
+        acquired.times { limiter.onSuccess(rttNanos) }
+    }
+}
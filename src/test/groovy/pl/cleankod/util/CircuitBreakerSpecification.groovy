@@ -0,0 +1,68 @@
+package pl.cleankod.util
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class CircuitBreakerSpecification extends Specification {
+
+    def "should open after the failure threshold is reached"() {
+        given:
+        def circuitBreaker = new CircuitBreaker(60_000L, 3)
+
+        when:
+        3.times { circuitBreaker.recordFailure() }
+
+        then:
+        !circuitBreaker.isAvailable()
+    }
+
+    def "should let a single trial call through once the failure timeout has passed"() {
+        given:
+        def circuitBreaker = new CircuitBreaker(200L, 1)
+        circuitBreaker.recordFailure()
+        Thread.sleep(250)
+        def executor = Executors.newFixedThreadPool(8)
+
+        when:
+        def admitted = executor.invokeAll((1..8).collect {
+            { -> circuitBreaker.isAvailable() } as Callable<Boolean>
+        }).count { it.get() }
+
+        then:
+        admitted == 1
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "should close after a successful trial call"() {
+        given:
+        def circuitBreaker = new CircuitBreaker(200L, 1)
+        circuitBreaker.recordFailure()
+        Thread.sleep(250)
+
+        when:
+        circuitBreaker.isAvailable()
+        circuitBreaker.reset()
+
+        then:
+        circuitBreaker.isAvailable()
+        circuitBreaker.isAvailable()
+    }
+
+    def "should reopen after a failed trial call"() {
+        given:
+        def circuitBreaker = new CircuitBreaker(200L, 1)
+        circuitBreaker.recordFailure()
+        Thread.sleep(250)
+
+        when:
+        circuitBreaker.isAvailable()
+        circuitBreaker.recordFailure()
+
+        then:
+        !circuitBreaker.isAvailable()
+    }
+}
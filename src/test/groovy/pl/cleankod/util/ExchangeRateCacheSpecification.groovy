@@ -0,0 +1,59 @@
+package pl.cleankod.util
+
+import spock.lang.Specification
+
+import java.time.Instant
+
+class ExchangeRateCacheSpecification extends Specification {
+
+    def "should adopt a rate newer than the cached one"() {
+        given:
+        def cache = new ExchangeRateCache(600_000)
+        def now = Instant.now()
+        cache.putRate("EUR", new BigDecimal("4.5000"), now.minusSeconds(10))
+
+        when:
+        def adopted = cache.adoptRate("EUR", new BigDecimal("4.5452"), now)
+
+        then:
+        adopted
+        cache.getRate("EUR") == new BigDecimal("4.5452")
+    }
+
+    def "should reject a rate fetched too far in the future"() {
+        given:
+        def cache = new ExchangeRateCache(600_000)
+        cache.putRate("EUR", new BigDecimal("4.5000"))
+
+        when:
+        def adopted = cache.adoptRate("EUR", new BigDecimal("9.9999"), Instant.now().plusSeconds(3600))
+
+        then:
+        !adopted
+        cache.getRate("EUR") == new BigDecimal("4.5000")
+    }
+
+    def "should clamp a slightly future fetch time so it does not outlive its refresh period"() {
+        given:
+        def cache = new ExchangeRateCache(1000)
+
+        when:
+        cache.adoptRate("EUR", new BigDecimal("4.5452"), Instant.now().plusSeconds(3))
+        Thread.sleep(1100)
+
+        then:
+        cache.getRate("EUR") == null
+    }
+
+    def "should keep an adopted rate for a grace period after its refresh period"() {
+        given:
+        def cache = new ExchangeRateCache(1000, 2000)
+
+        when:
+        cache.adoptRate("EUR", new BigDecimal("4.5452"), Instant.now())
+        Thread.sleep(1100)
+
+        then:
+        cache.getRate("EUR") == new BigDecimal("4.5452")
+    }
+}
@@ -0,0 +1,31 @@
+package pl.cleankod.util
+
+import spock.lang.Specification
+
+class LogRateLimiterSpecification extends Specification {
+
+    def "should let one statement through per interval and count the rest"() {
+        given:
+        def limiter = new LogRateLimiter(60_000)
+
+        when:
+        def results = (1..4).collect { limiter.tryAcquire() }
+
+        then:
+        results == [true, false, false, false]
+        limiter.drainSuppressed() == 3
+        limiter.drainSuppressed() == 0
+    }
+
+    def "should let a statement through once the interval has passed"() {
+        given:
+        def limiter = new LogRateLimiter(10)
+        limiter.tryAcquire()
+
+        when:
+        Thread.sleep(20)
+
+        then:
+        limiter.tryAcquire()
+    }
+}